@@ -1,14 +1,14 @@
 package io.ebean.idea.ebean10.plugin;
 
 import io.ebean.enhance.common.ClassBytesReader;
-import io.ebean.enhance.common.InputStreamTransform;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.net.URLConnection;
 
 /**
- * Just read the bytes using the ClassLoader.
+ * Just read the bytes using the ClassLoader (sized by content length where known).
  */
 class BasicClassBytesReader implements ClassBytesReader {
 
@@ -25,8 +25,10 @@ class BasicClassBytesReader implements ClassBytesReader {
 				return null;
 			}
 
-			is = UrlHelper.openNoCache(url);
-			return InputStreamTransform.readBytes(is);
+			URLConnection connection = UrlHelper.connectNoCache(url);
+			long length = connection.getContentLengthLong();
+			is = connection.getInputStream();
+			return IOUtils.readClassBytes(is, length);
 
 		} catch (IOException e) {
 			throw new RuntimeException("IOException reading bytes for " + className, e);
@@ -21,6 +21,8 @@ package io.ebean.idea.ebean10.plugin;
 
 import com.intellij.openapi.compiler.CompilationStatusListener;
 import com.intellij.openapi.compiler.CompileContext;
+import com.intellij.debugger.ui.HotSwapVetoableListener;
+import com.intellij.openapi.project.Project;
 import io.ebean.enhance.common.ClassMetaCache;
 
 import java.io.File;
@@ -32,11 +34,23 @@ import java.util.Map;
 /**
  * @author yevgenyk - Updated 28/04/2014 for IDEA 13
  */
-public class CompiledFileCollector implements CompilationStatusListener {
+public class CompiledFileCollector implements CompilationStatusListener, HotSwapVetoableListener {
 
   private Map<String, CompiledFile> compiledClasses = new HashMap<>();
 
-  private final ClassMetaCache metaCache = new ClassMetaCache();
+  /**
+   * Classes of modules without Ebean, not enhanced but hot swapped with the enhanced batch.
+   */
+  private Map<String, File> reloadOnlyClasses = new HashMap<>();
+
+  private final EnhancementModuleFilter moduleFilter;
+
+  private final EnhancementScheduler scheduler;
+
+  public CompiledFileCollector(Project project, EbeanActionComponent.EbeanEnhancementState settings) {
+    this.moduleFilter = new EnhancementModuleFilter(project);
+    this.scheduler = new EnhancementScheduler(project, new ClassMetaCache(), moduleFilter, settings);
+  }
 
   @Override
   public void fileGenerated(String outputRoot, String relativePath) {
@@ -44,7 +58,12 @@ public class CompiledFileCollector implements CompilationStatusListener {
     // Collect all valid compiled '.class' files
     CompiledFile compiledFile = createCompiledFile(outputRoot, relativePath);
     if (compiledFile != null) {
-      addClass(compiledFile);
+      if (moduleFilter.isRelevantOutputRoot(outputRoot)) {
+        addClass(compiledFile);
+      } else {
+        // module without Ebean on its classpath
+        reloadOnlyClasses.put(compiledFile.className, compiledFile.file);
+      }
     }
   }
 
@@ -77,15 +96,39 @@ public class CompiledFileCollector implements CompilationStatusListener {
 
   @Override
   public void automakeCompilationFinished(int errors, int warnings, CompileContext compileContext) {
-    process(compileContext);
+    // debounce as automake fires on every save
+    this.reloadOnlyClasses = new HashMap<>();
+    scheduler.schedule(compileContext, collect());
   }
 
   @Override
   public void compilationFinished(boolean aborted, int errors, int warnings, CompileContext compileContext) {
-    process(compileContext);
+    Map<String, File> reloadOnly = reloadOnlyClasses;
+    this.reloadOnlyClasses = new HashMap<>();
+    scheduler.runNow(compileContext, collect(), reloadOnly);
   }
 
-  private void process(CompileContext compileContext) {
+  /**
+   * Veto the IDE hot swap of the unenhanced classes for a compile whose enhancement is pending.
+   * The classes of that compile are hot swapped as one batch after enhancement instead.
+   * <p>
+   * The IDE only asks for clean (non aborted, error free) compiles with hot swap enabled, so only
+   * the runs of vetoed compiles hot swap.
+   * </p>
+   */
+  @Override
+  public boolean shouldHotSwap(CompileContext finishedCompilationContext) {
+    if (compiledClasses.isEmpty() && !scheduler.isUnfinished(finishedCompilationContext)) {
+      return true;
+    }
+    scheduler.vetoed(finishedCompilationContext);
+    return false;
+  }
+
+  /**
+   * Return the collected classes (including matching query beans) and reset the collection.
+   */
+  private Map<String, File> collect() {
 
     Map<String,File> asFileMap = new LinkedHashMap<>();
 
@@ -102,8 +145,8 @@ public class CompiledFileCollector implements CompilationStatusListener {
       }
     }
 
-    new EbeanEnhancementTask(metaCache, compileContext, asFileMap).process();
     this.compiledClasses = new HashMap<>();
+    return asFileMap;
   }
 
   private void addEntry(Map<String, File> asFileMap, CompiledFile value) {
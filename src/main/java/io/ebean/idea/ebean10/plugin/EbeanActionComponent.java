@@ -19,6 +19,7 @@
 
 package io.ebean.idea.ebean10.plugin;
 
+import com.intellij.debugger.ui.HotSwapUI;
 import com.intellij.openapi.compiler.CompilerManager;
 import com.intellij.openapi.components.*;
 import com.intellij.openapi.project.Project;
@@ -45,8 +46,8 @@ public class EbeanActionComponent implements ProjectComponent, PersistentStateCo
 
     public EbeanActionComponent(Project project) {
         this.project = project;
-        this.compiledFileCollector = new CompiledFileCollector();
         this.ebeanEnhancementState = new EbeanEnhancementState();
+        this.compiledFileCollector = new CompiledFileCollector(project, ebeanEnhancementState);
     }
 
     @Override
@@ -79,8 +80,10 @@ public class EbeanActionComponent implements ProjectComponent, PersistentStateCo
     public void setEnabled(boolean enabled) {
         if (!this.ebeanEnhancementState.enabled && enabled) {
             getCompilerManager().addCompilationStatusListener(compiledFileCollector);
+            getHotSwapUI().addListener(compiledFileCollector);
         } else if (this.ebeanEnhancementState.enabled && !enabled) {
             getCompilerManager().removeCompilationStatusListener(compiledFileCollector);
+            getHotSwapUI().removeListener(compiledFileCollector);
         }
         this.ebeanEnhancementState.enabled = enabled;
     }
@@ -89,6 +92,10 @@ public class EbeanActionComponent implements ProjectComponent, PersistentStateCo
         return CompilerManager.getInstance(project);
     }
 
+    private HotSwapUI getHotSwapUI() {
+        return HotSwapUI.getInstance(project);
+    }
+
     @Nullable
     @Override
     public EbeanEnhancementState getState() {
@@ -103,5 +110,15 @@ public class EbeanActionComponent implements ProjectComponent, PersistentStateCo
 
     public static class EbeanEnhancementState {
         public boolean enabled;
+
+        /**
+         * Automake events arriving within this period are merged into one enhancement run.
+         */
+        public int automakeQuietPeriodMillis = 500;
+
+        /**
+         * Maximum time a pending automake enhancement run is delayed by further events.
+         */
+        public int automakeMaxDelayMillis = 3000;
     }
 }
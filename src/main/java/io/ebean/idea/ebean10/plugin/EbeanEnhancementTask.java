@@ -22,6 +22,7 @@ package io.ebean.idea.ebean10.plugin;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.TransactionGuard;
 import com.intellij.openapi.compiler.CompileContext;
+import com.intellij.openapi.compiler.CompilerPaths;
 import com.intellij.openapi.compiler.CompilerMessageCategory;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
@@ -35,7 +36,6 @@ import io.ebean.enhance.Transformer;
 import io.ebean.enhance.common.AgentManifest;
 import io.ebean.enhance.common.ClassMetaCache;
 import io.ebean.enhance.common.EnhanceContext;
-import io.ebean.enhance.common.InputStreamTransform;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -45,6 +45,7 @@ import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -61,14 +62,20 @@ class EbeanEnhancementTask {
 
 	private final ClassMetaCache metaCache;
 
+	private final EnhancementModuleFilter moduleFilter;
+
 	private final CompileContext compileContext;
 
 	private final Map<String, File> compiledClasses;
 
-	EbeanEnhancementTask(ClassMetaCache metaCache, CompileContext compileContext, Map<String, File> compiledClasses) {
+	private final EnhancementScheduler.Run run;
+
+	EbeanEnhancementTask(ClassMetaCache metaCache, EnhancementModuleFilter moduleFilter, EnhancementScheduler.Run run) {
 		this.metaCache = metaCache;
-		this.compileContext = compileContext;
-		this.compiledClasses = compiledClasses;
+		this.moduleFilter = moduleFilter;
+		this.compileContext = run.compileContext();
+		this.compiledClasses = run.classes();
+		this.run = run;
 	}
 
 	void process() {
@@ -95,6 +102,8 @@ class EbeanEnhancementTask {
 		} catch (Exception e) {
 			log.error("Error performing Ebean enhancement", e);
 			logError(e.getClass().getName() + ":" + e.getMessage());
+		} finally {
+			run.complete();
 		}
 	}
 
@@ -124,15 +133,34 @@ class EbeanEnhancementTask {
 		progressIndicator.setIndeterminate(true);
 		progressIndicator.setText("Ebean enhancement");
 
+		boolean hotSwap = run.isHotSwap();
+		Map<String, File> processed = new LinkedHashMap<>();
+		IOUtils.ReadStats startStats = IOUtils.readStats();
 		try {
 			for (Entry<String, File> entry : compiledClasses.entrySet()) {
 				String className = entry.getKey();
+				if (run.isSuperseded(className)) {
+					if (hotSwap) {
+						// the IDE hot swap was vetoed so the newer run must reload it
+						run.oweReload(className, entry.getValue());
+					}
+					continue;
+				}
 				progressIndicator.setText2(className);
 				processEnhancement(classLoader, transformer, className, entry.getValue());
+				processed.put(className, entry.getValue());
 			}
 
 			metaCache.setFallback();
-			logInfo("Ebean enhancement done!  fbHits:" + metaCache.getFallbackHits());
+			logInfo("Ebean enhancement done!  fbHits:" + metaCache.getFallbackHits() + " " + IOUtils.readStats().since(startStats));
+
+			Map<String, File> hotSwapClasses = run.takeOwedReloads(processed.keySet());
+			if (hotSwap) {
+				// the IDE hot swap was vetoed, reload the (enhanced) classes into debug sessions in one batch
+				hotSwapClasses.putAll(run.reloadOnlyClasses());
+				hotSwapClasses.putAll(processed);
+			}
+			EnhancedClassHotSwap.reload(compileContext.getProject(), hotSwapClasses);
 		} catch (Throwable e) {
 			log.error("Error processing enhancement", e);
 			logError("Exception trying to enhance. Please try Build -> Rebuild Project, error:" + e.getMessage());
@@ -169,15 +197,18 @@ class EbeanEnhancementTask {
 	/**
 	 * Build the base classLoader. Ideally we have the "compile classpath" but we don't have that here.
 	 * (Agents use classLoader to determine common super classes etc).
+	 * Uses the affected modules of all compiles merged into the run.
+	 * Modules without Ebean are skipped (relevant modules include them recursively when they depend on them).
 	 */
 	private ClassLoader buildClassLoader() throws MalformedURLException {
 
-		Module[] modules = compileContext.getProjectCompileScope().getAffectedModules();
-
 		List<URL> out = new ArrayList<>();
-		for (Module module : modules) {
-			addFileSystemUrl(out, compileContext.getModuleOutputDirectory(module));
-			addFileSystemUrl(out, compileContext.getModuleOutputDirectoryForTests(module));
+		for (Module module : run.modules()) {
+			if (!moduleFilter.isRelevant(module)) {
+				continue;
+			}
+			addFileSystemUrl(out, CompilerPaths.getModuleOutputDirectory(module, false));
+			addFileSystemUrl(out, CompilerPaths.getModuleOutputDirectory(module, true));
 			addModulePaths(module, out);
 		}
 
@@ -237,7 +268,7 @@ class EbeanEnhancementTask {
 	private byte[] readFileBytes(File file) throws IOException {
 		FileInputStream fis = new FileInputStream(file);
 		try {
-			return InputStreamTransform.readBytes(fis);
+			return IOUtils.readClassBytes(fis, file.length());
 		} finally {
 			try {
 				fis.close();
@@ -0,0 +1,90 @@
+package io.ebean.idea.ebean10.plugin;
+
+import com.intellij.debugger.DebuggerManagerEx;
+import com.intellij.debugger.impl.DebuggerSession;
+import com.intellij.debugger.impl.HotSwapFile;
+import com.intellij.debugger.impl.HotSwapManager;
+import com.intellij.debugger.settings.DebuggerSettings;
+import com.intellij.debugger.ui.HotSwapProgressImpl;
+import com.intellij.debugger.ui.RunHotswapDialog;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reloads the classes of a compile into the attached debug sessions after enhancement.
+ * <p>
+ * The IDE hot swap is vetoed for compiles with pending enhancement (see CompiledFileCollector)
+ * and instead all the classes are redefined here in one batch per session, so the debugger
+ * only sees the enhanced bytes. Follows the "Reload classes after compilation" debugger setting.
+ * </p>
+ */
+class EnhancedClassHotSwap {
+
+  /**
+   * HotSwap the given classes (class name to class file) into the attached debug sessions.
+   */
+  static void reload(Project project, Map<String, File> classes) {
+
+    String runHotSwap = DebuggerSettings.getInstance().RUN_HOTSWAP_AFTER_COMPILE;
+    if (classes.isEmpty() || DebuggerSettings.RUN_HOTSWAP_NEVER.equals(runHotSwap)) {
+      return;
+    }
+
+    List<DebuggerSession> sessions = new ArrayList<>();
+    for (DebuggerSession session : DebuggerManagerEx.getInstanceEx(project).getSessions()) {
+      // same filter as the IDE hot swap
+      if (session.isAttached() && session.getProcess().canRedefineClasses()) {
+        sessions.add(session);
+      }
+    }
+    if (sessions.isEmpty()) {
+      return;
+    }
+
+    if (DebuggerSettings.RUN_HOTSWAP_ASK.equals(runHotSwap)) {
+      // not from within the enhancement write action
+      ApplicationManager.getApplication().invokeLater(() -> {
+        RunHotswapDialog dialog = new RunHotswapDialog(project, sessions, false);
+        if (dialog.showAndGet()) {
+          reload(project, dialog.getSessionsToReload(), classes);
+        }
+      }, project.getDisposed());
+    } else {
+      reload(project, sessions, classes);
+    }
+  }
+
+  private static void reload(Project project, Collection<DebuggerSession> sessions, Map<String, File> classes) {
+
+    Map<String, HotSwapFile> files = new HashMap<>();
+    for (Map.Entry<String, File> entry : classes.entrySet()) {
+      files.put(entry.getKey(), new HotSwapFile(entry.getValue()));
+    }
+
+    Map<DebuggerSession, Map<String, HotSwapFile>> modifiedClasses = new HashMap<>();
+    for (DebuggerSession session : sessions) {
+      modifiedClasses.put(session, files);
+    }
+    if (modifiedClasses.isEmpty()) {
+      return;
+    }
+
+    HotSwapProgressImpl progress = new HotSwapProgressImpl(project);
+    ApplicationManager.getApplication().executeOnPooledThread(() -> {
+      try {
+        ProgressManager.getInstance().runProcess(
+            () -> HotSwapManager.reloadModifiedClasses(modifiedClasses, progress), progress.getProgressIndicator());
+      } finally {
+        progress.finished();
+      }
+    });
+  }
+}
@@ -0,0 +1,148 @@
+package io.ebean.idea.ebean10.plugin;
+
+import com.intellij.ProjectTopics;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.CompilerModuleExtension;
+import com.intellij.openapi.roots.ModuleRootAdapter;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.roots.OrderEnumerator;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarFile;
+
+/**
+ * Determines if a module is relevant for enhancement, that is its classpath contains
+ * Ebean artifacts or an ebean.mf manifest (in a directory or a jar).
+ * <p>
+ * The decision is made once per module (and per module output root) and cached until the
+ * project roots change. Only the module model is read under the read lock, the file and jar
+ * probing is done outside it.
+ * </p>
+ */
+class EnhancementModuleFilter {
+
+  private static final Logger log = Logger.getInstance("io.ebean");
+
+  private static final String MANIFEST = "META-INF/ebean.mf";
+
+  private final Project project;
+
+  private final Map<Module, Boolean> relevantModules = new ConcurrentHashMap<>();
+
+  private final Map<String, Boolean> relevantOutputRoots = new ConcurrentHashMap<>();
+
+  /**
+   * Jars (shared by many modules) known to contain or not contain ebean.mf.
+   */
+  private final Map<String, Boolean> jarManifests = new ConcurrentHashMap<>();
+
+  EnhancementModuleFilter(Project project) {
+    this.project = project;
+    project.getMessageBus().connect(project).subscribe(ProjectTopics.PROJECT_ROOTS, new ModuleRootAdapter() {
+      @Override
+      public void rootsChanged(ModuleRootEvent event) {
+        clear();
+      }
+    });
+  }
+
+  private void clear() {
+    relevantModules.clear();
+    relevantOutputRoots.clear();
+    jarManifests.clear();
+  }
+
+  /**
+   * Return true if classes compiled to the given output root should be enhanced.
+   * <p>
+   * Output roots that do not map to a module are treated as relevant.
+   * </p>
+   */
+  boolean isRelevantOutputRoot(String outputRoot) {
+    return relevantOutputRoots.computeIfAbsent(outputRoot, root -> {
+      Module module = ApplicationManager.getApplication().runReadAction((Computable<Module>) () -> findModule(root));
+      return module == null || isRelevant(module);
+    });
+  }
+
+  /**
+   * Return true if the module classpath contains Ebean.
+   */
+  boolean isRelevant(Module module) {
+    return relevantModules.computeIfAbsent(module, m -> {
+      List<String> paths = ApplicationManager.getApplication().runReadAction((Computable<List<String>>) () ->
+          OrderEnumerator.orderEntries(m).recursively().getPathsList().getPathList());
+      boolean relevant = hasEbean(paths);
+      if (!relevant) {
+        log.debug("Ebean enhancement excludes module " + m.getName() + " (no ebean artifact or " + MANIFEST + " on its classpath)");
+      }
+      return relevant;
+    });
+  }
+
+  private Module findModule(String outputRoot) {
+    for (Module module : ModuleManager.getInstance(project).getModules()) {
+      CompilerModuleExtension extension = CompilerModuleExtension.getInstance(module);
+      if (extension != null
+          && (sameRoot(outputRoot, extension.getCompilerOutputUrl())
+          || sameRoot(outputRoot, extension.getCompilerOutputUrlForTests()))) {
+        return module;
+      }
+    }
+    return null;
+  }
+
+  private static boolean sameRoot(String outputRoot, String outputUrl) {
+    if (outputUrl == null) {
+      return false;
+    }
+    return FileUtil.pathsEqual(FileUtil.toSystemIndependentName(outputRoot), VfsUtilCore.urlToPath(outputUrl));
+  }
+
+  private boolean hasEbean(List<String> paths) {
+
+    for (String pathEntry : paths) {
+      File file = new File(pathEntry);
+      if (file.isDirectory()) {
+        if (new File(file, MANIFEST).exists()) {
+          return true;
+        }
+      } else if (isEbeanArtifact(file.getName()) || jarHasManifest(file)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Return true if the jar contains ebean.mf (e.g. a shared entity library).
+   */
+  private boolean jarHasManifest(File file) {
+    if (!file.getName().endsWith(".jar")) {
+      return false;
+    }
+    return jarManifests.computeIfAbsent(file.getPath(), path -> {
+      try (JarFile jarFile = new JarFile(file)) {
+        return jarFile.getEntry(MANIFEST) != null;
+      } catch (IOException e) {
+        log.debug("Error reading " + path + " checking for " + MANIFEST, e);
+        return false;
+      }
+    });
+  }
+
+  private static boolean isEbeanArtifact(String fileName) {
+    return fileName.endsWith(".jar") && (fileName.startsWith("ebean") || fileName.startsWith("io.ebean"));
+  }
+}
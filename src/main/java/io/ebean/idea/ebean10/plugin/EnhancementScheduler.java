@@ -0,0 +1,288 @@
+package io.ebean.idea.ebean10.plugin;
+
+import com.intellij.openapi.compiler.CompileContext;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.Alarm;
+import io.ebean.enhance.common.ClassMetaCache;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Debounces automake compilation events into a single enhancement run.
+ * <p>
+ * Classes from successive automake events are merged into one pending batch which is
+ * enhanced once no further events have arrived for the quiet period, or once the maximum
+ * delay since the first pending event has elapsed (whichever comes first). The affected
+ * modules of all merged compiles are kept so the run classpath covers every merged class.
+ * </p>
+ * <p>
+ * A run that has been submitted but not yet executed skips any class that a newer run
+ * also covers, as the newer run will enhance the freshly compiled bytes.
+ * </p>
+ */
+class EnhancementScheduler {
+
+  private final ClassMetaCache metaCache;
+
+  private final EnhancementModuleFilter moduleFilter;
+
+  private final EbeanActionComponent.EbeanEnhancementState settings;
+
+  private final Alarm alarm;
+
+  private Map<String, File> pending = new LinkedHashMap<>();
+
+  private Set<Module> pendingModules = new LinkedHashSet<>();
+
+  private Set<CompileContext> pendingContexts = new LinkedHashSet<>();
+
+  private CompileContext pendingContext;
+
+  private long pendingSince;
+
+  private long runSeq;
+
+  /**
+   * The sequence of the most recent unfinished run that includes each class.
+   */
+  private final Map<String, Long> latestRun = new HashMap<>();
+
+  private final Set<Run> unfinishedRuns = new HashSet<>();
+
+  /**
+   * Compiles for which the IDE hot swap was vetoed, their runs hot swap instead.
+   */
+  private final Set<CompileContext> vetoedContexts = Collections.newSetFromMap(new WeakHashMap<>());
+
+  /**
+   * Classes skipped by a hot swap run as superseded, the newer run that enhances them reloads them.
+   */
+  private final Map<String, File> owedReloads = new HashMap<>();
+
+  EnhancementScheduler(Project project, ClassMetaCache metaCache, EnhancementModuleFilter moduleFilter, EbeanActionComponent.EbeanEnhancementState settings) {
+    this.metaCache = metaCache;
+    this.moduleFilter = moduleFilter;
+    this.settings = settings;
+    this.alarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, project);
+  }
+
+  /**
+   * Add the classes of an automake compile to the pending batch and (re)schedule the run.
+   */
+  synchronized void schedule(CompileContext compileContext, Map<String, File> compiledClasses) {
+    if (compiledClasses.isEmpty()) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    if (pending.isEmpty()) {
+      pendingSince = now;
+    }
+    addPending(compileContext, compiledClasses);
+
+    long maxRemaining = Math.max(0, pendingSince + settings.automakeMaxDelayMillis - now);
+    long delay = Math.min(settings.automakeQuietPeriodMillis, maxRemaining);
+
+    alarm.cancelAllRequests();
+    if (delay <= 0) {
+      flush(Collections.emptyMap());
+    } else {
+      alarm.addRequest(this::flushPending, delay);
+    }
+  }
+
+  /**
+   * Enhance the classes of an explicit compile immediately along with any pending automake classes.
+   * <p>
+   * If the IDE hot swap is vetoed for the compile the run hot swaps its classes (and the reload only
+   * classes) into debug sessions.
+   * </p>
+   */
+  synchronized void runNow(CompileContext compileContext, Map<String, File> compiledClasses, Map<String, File> reloadOnlyClasses) {
+    alarm.cancelAllRequests();
+    if (compiledClasses.isEmpty()) {
+      // nothing to enhance so the IDE hot swap is not vetoed for this compile
+      flush(Collections.emptyMap());
+    } else {
+      addPending(compileContext, compiledClasses);
+      flush(reloadOnlyClasses);
+    }
+  }
+
+  synchronized void vetoed(CompileContext compileContext) {
+    vetoedContexts.add(compileContext);
+  }
+
+  private synchronized boolean isVetoed(Run run) {
+    for (CompileContext context : run.contexts) {
+      if (vetoedContexts.contains(context)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Return true if the compile has classes pending enhancement (scheduled or submitted).
+   */
+  synchronized boolean isUnfinished(CompileContext compileContext) {
+    if (pendingContexts.contains(compileContext)) {
+      return true;
+    }
+    for (Run run : unfinishedRuns) {
+      if (run.contexts.contains(compileContext)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void addPending(CompileContext compileContext, Map<String, File> compiledClasses) {
+    pending.putAll(compiledClasses);
+    pendingModules.addAll(Arrays.asList(compileContext.getProjectCompileScope().getAffectedModules()));
+    pendingContexts.add(compileContext);
+    // the latest context is only used for messages and progress
+    pendingContext = compileContext;
+  }
+
+  private synchronized void flushPending() {
+    if (!pending.isEmpty()) {
+      flush(Collections.emptyMap());
+    }
+  }
+
+  private void flush(Map<String, File> reloadOnlyClasses) {
+    Map<String, File> batch = pending;
+    Set<Module> modules = pendingModules;
+    Set<CompileContext> contexts = pendingContexts;
+    CompileContext compileContext = pendingContext;
+    pending = new LinkedHashMap<>();
+    pendingModules = new LinkedHashSet<>();
+    pendingContexts = new LinkedHashSet<>();
+    pendingContext = null;
+
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    Run run = new Run(++runSeq, compileContext, contexts, modules, batch, reloadOnlyClasses);
+    for (String className : batch.keySet()) {
+      latestRun.put(className, run.seq);
+    }
+    unfinishedRuns.add(run);
+    new EbeanEnhancementTask(metaCache, moduleFilter, run).process();
+  }
+
+  /**
+   * Remove the entries of the finished run (entries replaced by a newer run are kept).
+   */
+  private synchronized void complete(Run run) {
+    unfinishedRuns.remove(run);
+    vetoedContexts.removeAll(run.contexts);
+    for (String className : run.classes.keySet()) {
+      latestRun.remove(className, run.seq);
+    }
+  }
+
+  private synchronized void oweReload(String className, File file) {
+    owedReloads.put(className, file);
+  }
+
+  private synchronized Map<String, File> takeOwedReloads(Collection<String> classNames) {
+    Map<String, File> owed = new LinkedHashMap<>();
+    for (String className : classNames) {
+      File file = owedReloads.remove(className);
+      if (file != null) {
+        owed.put(className, file);
+      }
+    }
+    return owed;
+  }
+
+  /**
+   * Return true if a newer run (submitted or pending) will also enhance this class.
+   */
+  private synchronized boolean isSuperseded(String className, long seq) {
+    if (pending.containsKey(className)) {
+      return true;
+    }
+    Long latest = latestRun.get(className);
+    return latest != null && latest > seq;
+  }
+
+  /**
+   * A batch of classes to enhance along with the modules of all the compiles it merges.
+   * The compile context is that of the latest merged compile (for messages and progress).
+   * Reload only classes are classes of modules without Ebean, hot swapped with the batch.
+   */
+  class Run {
+
+    private final long seq;
+
+    private final CompileContext compileContext;
+
+    private final Set<CompileContext> contexts;
+
+    private final Set<Module> modules;
+
+    private final Map<String, File> classes;
+
+    private final Map<String, File> reloadOnlyClasses;
+
+    private Run(long seq, CompileContext compileContext, Set<CompileContext> contexts, Set<Module> modules,
+                Map<String, File> classes, Map<String, File> reloadOnlyClasses) {
+      this.seq = seq;
+      this.compileContext = compileContext;
+      this.contexts = contexts;
+      this.modules = Collections.unmodifiableSet(modules);
+      this.classes = Collections.unmodifiableMap(classes);
+      this.reloadOnlyClasses = Collections.unmodifiableMap(reloadOnlyClasses);
+    }
+
+    CompileContext compileContext() {
+      return compileContext;
+    }
+
+    Set<Module> modules() {
+      return modules;
+    }
+
+    Map<String, File> classes() {
+      return classes;
+    }
+
+    boolean isHotSwap() {
+      return isVetoed(this);
+    }
+
+    Map<String, File> reloadOnlyClasses() {
+      return reloadOnlyClasses;
+    }
+
+    boolean isSuperseded(String className) {
+      return EnhancementScheduler.this.isSuperseded(className, seq);
+    }
+
+    void oweReload(String className, File file) {
+      EnhancementScheduler.this.oweReload(className, file);
+    }
+
+    Map<String, File> takeOwedReloads(Collection<String> classNames) {
+      return EnhancementScheduler.this.takeOwedReloads(classNames);
+    }
+
+    void complete() {
+      EnhancementScheduler.this.complete(this);
+    }
+  }
+}
@@ -10,12 +10,164 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Utilities for IO.
  */
 class IOUtils {
 
+  private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+  /**
+   * Larger buffers are used for the read at hand but not retained.
+   */
+  private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+
+  /**
+   * Fallback buffer for reads where the content length is not known (file: and jar: URLs provide it).
+   * Enhancement runs in a write action so in practice this is a single buffer for the EDT.
+   */
+  private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> allocate(INITIAL_BUFFER_SIZE));
+
+  private static final AtomicLong reads = new AtomicLong();
+  private static final AtomicLong bytesRead = new AtomicLong();
+  private static final AtomicLong allocations = new AtomicLong();
+  private static final AtomicLong allocatedBytes = new AtomicLong();
+
+  /**
+   * Read the class bytes from the input stream returning an array of the exact size.
+   * <p>
+   * When the length is known (e.g. file length) the result is read directly into an array of that
+   * size, otherwise the content is read via the fallback buffer and copied once to the exact size.
+   * The input stream is not closed.
+   * </p>
+   *
+   * @param length the expected length or a negative value when not known
+   */
+  static byte[] readClassBytes(InputStream in, long length) throws IOException {
+
+    reads.incrementAndGet();
+    if (length < 0 || length > Integer.MAX_VALUE) {
+      return readBuffered(in, BUFFER.get(), 0);
+    }
+
+    byte[] bytes = allocate((int) length);
+    int count = fill(in, bytes);
+    bytesRead.addAndGet(count);
+    if (count < bytes.length) {
+      // content shorter than expected
+      return copy(bytes, count);
+    }
+    int next = in.read();
+    if (next == -1) {
+      return bytes;
+    }
+    // content longer than expected, continue via the fallback buffer
+    byte[] buffer = ensureCapacity(BUFFER.get(), 0, bytes.length + 1);
+    System.arraycopy(bytes, 0, buffer, 0, bytes.length);
+    buffer[bytes.length] = (byte) next;
+    bytesRead.incrementAndGet();
+    return readBuffered(in, buffer, bytes.length + 1);
+  }
+
+  /**
+   * Read the rest of the content into the buffer (from offset) returning a copy of the exact size.
+   */
+  private static byte[] readBuffered(InputStream in, byte[] buffer, int offset) throws IOException {
+
+    int count = offset;
+    for (; ; ) {
+      if (count == buffer.length) {
+        buffer = ensureCapacity(buffer, count, count * 2);
+      }
+      int bytes = in.read(buffer, count, buffer.length - count);
+      if (bytes < 0) {
+        break;
+      }
+      count += bytes;
+    }
+    bytesRead.addAndGet(count - offset);
+    return copy(buffer, count);
+  }
+
+  private static int fill(InputStream in, byte[] bytes) throws IOException {
+    int count = 0;
+    while (count < bytes.length) {
+      int read = in.read(bytes, count, bytes.length - count);
+      if (read < 0) {
+        break;
+      }
+      count += read;
+    }
+    return count;
+  }
+
+  /**
+   * Return the buffer if it has the required capacity or a larger replacement (keeping the used bytes).
+   * The replacement is retained as the fallback buffer unless it exceeds the maximum retained size.
+   */
+  private static byte[] ensureCapacity(byte[] buffer, int used, int capacity) {
+    if (buffer.length >= capacity) {
+      return buffer;
+    }
+    byte[] larger = allocate(Math.max(capacity, buffer.length * 2));
+    System.arraycopy(buffer, 0, larger, 0, used);
+    if (larger.length <= MAX_RETAINED_BUFFER_SIZE) {
+      BUFFER.set(larger);
+    }
+    return larger;
+  }
+
+  private static byte[] copy(byte[] buffer, int length) {
+    byte[] bytes = allocate(length);
+    System.arraycopy(buffer, 0, bytes, 0, length);
+    return bytes;
+  }
+
+  private static byte[] allocate(int size) {
+    allocations.incrementAndGet();
+    allocatedBytes.addAndGet(size);
+    return new byte[size];
+  }
+
+  /**
+   * Return a snapshot of the read and allocation counters.
+   */
+  static ReadStats readStats() {
+    return new ReadStats(reads.get(), bytesRead.get(), allocations.get(), allocatedBytes.get());
+  }
+
+  /**
+   * Counters for bytes read and byte arrays allocated by IOUtils.
+   */
+  static class ReadStats {
+
+    private final long reads;
+    private final long bytesRead;
+    private final long allocations;
+    private final long allocatedBytes;
+
+    private ReadStats(long reads, long bytesRead, long allocations, long allocatedBytes) {
+      this.reads = reads;
+      this.bytesRead = bytesRead;
+      this.allocations = allocations;
+      this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * Return the counters accumulated since the given (earlier) snapshot.
+     */
+    ReadStats since(ReadStats start) {
+      return new ReadStats(reads - start.reads, bytesRead - start.bytesRead, allocations - start.allocations, allocatedBytes - start.allocatedBytes);
+    }
+
+    @Override
+    public String toString() {
+      return "reads:" + reads + " bytesRead:" + bytesRead + " allocs:" + allocations + " allocBytes:" + allocatedBytes;
+    }
+  }
+
   /**
    * Reads the entire contents of the specified input stream and returns them
    * as a byte array.
@@ -1,7 +1,6 @@
 package io.ebean.idea.ebean10.plugin;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
 import java.net.URLConnection;
 
@@ -11,12 +10,12 @@ import java.net.URLConnection;
 public class UrlHelper {
 
   /**
-   * Open the URL content without using caching returning the resulting InputStream.
+   * Return the URL connection without using caching (such that content length can be read prior to the content).
    */
-  public static InputStream openNoCache(URL url) throws IOException {
+  public static URLConnection connectNoCache(URL url) throws IOException {
 
     URLConnection urlConnection = url.openConnection();
     urlConnection.setUseCaches(false);
-    return urlConnection.getInputStream();
+    return urlConnection;
   }
 }